@@ -0,0 +1,72 @@
+package org.mtransit.parser.ca_gatineau_sto_bus;
+
+import org.jetbrains.annotations.NotNull;
+import org.mtransit.parser.MTLog;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// raw string -> cleaned string (same raw values repeated for each trip & both service periods)
+final class CleanCache {
+
+	@NotNull
+	private final String name;
+	private final int maxSize;
+	private final boolean enabled;
+
+	private final ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	CleanCache(@NotNull String name, int maxSize, boolean enabled) {
+		this.name = name;
+		this.maxSize = maxSize;
+		this.enabled = enabled;
+	}
+
+	@NotNull
+	String get(@NotNull String raw, @NotNull Function<String, String> cleaner) {
+		if (!this.enabled) {
+			return cleaner.apply(raw);
+		}
+		final String cached = this.cache.get(raw);
+		if (cached != null) {
+			this.hits.incrementAndGet();
+			return cached;
+		}
+		this.misses.incrementAndGet();
+		final String cleaned = cleaner.apply(raw);
+		if (this.cache.size() >= this.maxSize) {
+			final int size = this.cache.size();
+			this.cache.clear(); // bounded: start over (cheaper than LRU)
+			if (this.evictions.getAndAdd(size) == 0L) {
+				MTLog.log("%s cache: max size %d reached, evicting all %d entries.", this.name, this.maxSize, size);
+			}
+		}
+		this.cache.put(raw, cleaned);
+		return cleaned;
+	}
+
+	void logStats() {
+		if (!this.enabled) {
+			MTLog.log("%s cache: disabled.", this.name);
+			return;
+		}
+		MTLog.log("%s cache: %d hits, %d misses, %d evictions (size: %d).",
+				this.name, this.hits.get(), this.misses.get(), this.evictions.get(), this.cache.size());
+	}
+
+	void appendJson(@NotNull StringBuilder sb) {
+		sb.append("{");
+		sb.append("\"name\":\"").append(this.name).append("\",");
+		sb.append("\"enabled\":").append(this.enabled).append(",");
+		sb.append("\"hits\":").append(this.hits.get()).append(",");
+		sb.append("\"misses\":").append(this.misses.get()).append(",");
+		sb.append("\"evictions\":").append(this.evictions.get()).append(",");
+		sb.append("\"size\":").append(this.cache.size());
+		sb.append("}");
+	}
+}
@@ -12,9 +12,14 @@ import org.mtransit.parser.gtfs.data.GStop;
 import org.mtransit.parser.mt.data.MAgency;
 import org.mtransit.parser.mt.data.MRoute;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,9 +31,27 @@ import static org.mtransit.commons.StringUtils.EMPTY;
 public class GatineauSTOBusAgencyTools extends DefaultAgencyTools {
 
 	public static void main(@NotNull String[] args) {
+		final long startTimeMs = System.currentTimeMillis();
+		// shutdown hook: also runs when the run fails (MTLog.Fatal may exit the JVM, skipping any finally)
+		Runtime.getRuntime().addShutdownHook(new Thread(() ->
+				RunReport.logAndWrite(args, startTimeMs,
+						new Stage[]{CLEAN_ROUTE_LONG_NAME_STAGE, CLEAN_TRIP_HEADSIGN_STAGE, CLEAN_STOP_NAME_STAGE},
+						new CleanCache[]{TRIP_HEADSIGN_CACHE, STOP_NAME_CACHE})
+		));
 		new GatineauSTOBusAgencyTools().start(args);
 	}
 
+	private static final Stage CLEAN_ROUTE_LONG_NAME_STAGE = new Stage("Clean route long names");
+	private static final Stage CLEAN_TRIP_HEADSIGN_STAGE = new Stage("Clean trip head-signs");
+	private static final Stage CLEAN_STOP_NAME_STAGE = new Stage("Clean stop names");
+
+	// -Dmt.sto.clean_cache=false to disable (to check that output is identical)
+	private static final boolean CLEAN_CACHE_ENABLED = Boolean.parseBoolean(System.getProperty("mt.sto.clean_cache", "true"));
+	private static final int CLEAN_CACHE_MAX_SIZE = 10_000;
+
+	private static final CleanCache TRIP_HEADSIGN_CACHE = new CleanCache("Trip head-sign", CLEAN_CACHE_MAX_SIZE, CLEAN_CACHE_ENABLED);
+	private static final CleanCache STOP_NAME_CACHE = new CleanCache("Stop name", CLEAN_CACHE_MAX_SIZE, CLEAN_CACHE_ENABLED);
+
 	@Override
 	public boolean defaultExcludeEnabled() {
 		return true;
@@ -65,10 +88,15 @@ public class GatineauSTOBusAgencyTools extends DefaultAgencyTools {
 	@NotNull
 	@Override
 	public String cleanRouteLongName(@NotNull String routeLongName) {
-		routeLongName = CleanUtils.toLowerCaseUpperCaseWords(Locale.FRENCH, routeLongName, getIgnoredWords());
-		routeLongName = CEGEP_GABRIELLE_ROY_.matcher(routeLongName).replaceAll(CEGEP_GABRIELLE_ROY_REPLACEMENT);
-		routeLongName = CleanUtils.cleanSlashes(routeLongName);
-		return CleanUtils.cleanLabel(routeLongName);
+		final long startNanos = CLEAN_ROUTE_LONG_NAME_STAGE.start();
+		try {
+			routeLongName = CleanUtils.toLowerCaseUpperCaseWords(Locale.FRENCH, routeLongName, getIgnoredWords());
+			routeLongName = CEGEP_GABRIELLE_ROY_.matcher(routeLongName).replaceAll(CEGEP_GABRIELLE_ROY_REPLACEMENT);
+			routeLongName = CleanUtils.cleanSlashes(routeLongName);
+			return CleanUtils.cleanLabel(routeLongName);
+		} finally {
+			CLEAN_ROUTE_LONG_NAME_STAGE.end(startNanos);
+		}
 	}
 
 	@Override
@@ -144,7 +172,64 @@ public class GatineauSTOBusAgencyTools extends DefaultAgencyTools {
 	private static final String RB200_COLOR = "DA002E"; // RED (from PDF)
 	private static final String SCHOOL_BUS_COLOR = "FFD800"; // YELLOW (from Wikipedia)
 
-	@SuppressWarnings("DuplicateBranchesInSwitch")
+	private static final int MAX_ROUTE_SHORT_NAME = 999;
+
+	private static final String NO_COLOR = EMPTY; // known route without color (agency color)
+
+	private static final String ROUTE_COLORS_RESOURCE = "route_colors.properties";
+
+	private static final Pattern HEX_COLOR = Pattern.compile("[0-9A-Fa-f]{6}");
+
+	// route short name -> color (null = unknown route)
+	private static final String[] ROUTE_COLORS = loadRouteColors();
+
+	@NotNull
+	private static String[] loadRouteColors() {
+		final Properties properties = new Properties();
+		try (InputStream inputStream = GatineauSTOBusAgencyTools.class.getResourceAsStream(ROUTE_COLORS_RESOURCE)) {
+			if (inputStream == null) {
+				throw new MTLog.Fatal("Route colors resource '%s' not found!", ROUTE_COLORS_RESOURCE);
+			}
+			properties.load(inputStream);
+		} catch (IOException ioe) {
+			throw new MTLog.Fatal(ioe, "Error while reading route colors resource '%s'!", ROUTE_COLORS_RESOURCE);
+		}
+		final String[] routeColors = new String[MAX_ROUTE_SHORT_NAME + 1];
+		for (String rsnString : properties.stringPropertyNames()) {
+			final int rsn;
+			try {
+				rsn = Integer.parseInt(rsnString.trim());
+			} catch (NumberFormatException nfe) {
+				throw new MTLog.Fatal(nfe, "Unexpected route short name '%s' in '%s'!", rsnString, ROUTE_COLORS_RESOURCE);
+			}
+			if (rsn < 0 || rsn > MAX_ROUTE_SHORT_NAME) {
+				throw new MTLog.Fatal("Unexpected route short name '%s' in '%s'!", rsnString, ROUTE_COLORS_RESOURCE);
+			}
+			routeColors[rsn] = parseRouteColor(properties.getProperty(rsnString).trim());
+		}
+		return routeColors;
+	}
+
+	@NotNull
+	private static String parseRouteColor(@NotNull String value) {
+		switch (value) {
+		// @formatter:off
+			case "NONE": return NO_COLOR;
+			case "REGULAR": return REGULAR_COLOR;
+			case "PEAK": return PEAK_COLOR;
+			case "RB100": return RB100_COLOR;
+			case "RB200": return RB200_COLOR;
+			// @formatter:on
+		}
+		if (!HEX_COLOR.matcher(value).matches()) {
+			throw new MTLog.Fatal("Unexpected route color '%s' in '%s'!", value, ROUTE_COLORS_RESOURCE);
+		}
+		return value.toUpperCase(Locale.ENGLISH);
+	}
+
+	// -Dmt.sto.fail_on_unknown_route_color=false to use agency color for new routes instead of failing
+	private static final boolean FAIL_ON_UNKNOWN_ROUTE_COLOR = Boolean.parseBoolean(System.getProperty("mt.sto.fail_on_unknown_route_color", "true"));
+
 	@Nullable
 	@Override
 	public String provideMissingRouteColor(@NotNull GRoute gRoute) {
@@ -153,134 +238,15 @@ public class GatineauSTOBusAgencyTools extends DefaultAgencyTools {
 		if (rsn > 100 && SCHOOL_ROUTE_LONG_NAME_.matcher(rln).find()) {
 			return SCHOOL_BUS_COLOR;
 		}
-		switch (rsn) {
-		// @formatter:off
-			case 11: return PEAK_COLOR;
-			case 15: return PEAK_COLOR;
-			case 17: return PEAK_COLOR;
-			case 18: return REGULAR_COLOR;
-			case 20: return PEAK_COLOR;
-			case 21: return REGULAR_COLOR;
-			case 22: return PEAK_COLOR;
-			case 23: return PEAK_COLOR;
-			case 24: return PEAK_COLOR;
-			case 25: return PEAK_COLOR;
-			case 26: return PEAK_COLOR;
-			case 27: return PEAK_COLOR;
-			case 28: return PEAK_COLOR;
-			case 29: return PEAK_COLOR;
-			case 31: return REGULAR_COLOR; // OCCASIONAL_COLOR;
-			case 32: return PEAK_COLOR;
-			case 33: return REGULAR_COLOR; // OCCASIONAL_COLOR;
-			case 34: return REGULAR_COLOR;
-			case 35: return REGULAR_COLOR; // OCCASIONAL_COLOR;
-			case 36: return REGULAR_COLOR; // OCCASIONAL_COLOR;
-			case 37: return REGULAR_COLOR; // OCCASIONAL_COLOR;
-			case 38: return REGULAR_COLOR; // OCCASIONAL_COLOR;
-			case 39: return REGULAR_COLOR;
-			case 40: return PEAK_COLOR;
-			case 41: return PEAK_COLOR;
-			case 42: return null; // TODO ?
-			case 44: return PEAK_COLOR;
-			case 45: return PEAK_COLOR;
-			case 46: return PEAK_COLOR;
-			case 47: return PEAK_COLOR;
-			case 48: return PEAK_COLOR;
-			case 49: return REGULAR_COLOR;
-			case 50: return PEAK_COLOR;
-			case 51: return REGULAR_COLOR;
-			case 52: return REGULAR_COLOR;
-			case 53: return REGULAR_COLOR;
-			case 54: return PEAK_COLOR;
-			case 55: return REGULAR_COLOR;
-			case 56: return REGULAR_COLOR;
-			case 57: return REGULAR_COLOR;
-			case 58: return PEAK_COLOR;
-			case 59: return REGULAR_COLOR; // OCCASIONAL_COLOR;
-			case 60: return PEAK_COLOR;
-			case 61: return PEAK_COLOR;
-			case 62: return REGULAR_COLOR;
-			case 63: return REGULAR_COLOR;
-			case 64: return REGULAR_COLOR;
-			case 65: return REGULAR_COLOR;
-			case 66: return REGULAR_COLOR;
-			case 67: return PEAK_COLOR;
-			case 68: return REGULAR_COLOR; // RAPIBUS_COLOR
-			case 69: return REGULAR_COLOR;
-			case 71: return REGULAR_COLOR;
-			case 72: return null; // TODO ?
-			case 73: return REGULAR_COLOR;
-			case 74: return PEAK_COLOR;
-			case 75: return REGULAR_COLOR;
-			case 76: return REGULAR_COLOR;
-			case 77: return REGULAR_COLOR;
-			case 78: return REGULAR_COLOR;
-			case 79: return REGULAR_COLOR;
-			case 85: return PEAK_COLOR;
-			case 87: return PEAK_COLOR;
-			case 88: return PEAK_COLOR;
-			case 93: return PEAK_COLOR; // RAPIBUS_COLOR
-			case 95: return PEAK_COLOR; // RAPIBUS_COLOR
-			case 94: return PEAK_COLOR;
-			case 97: return REGULAR_COLOR;
-			case 98: return PEAK_COLOR;
-			case 100: return RB100_COLOR; // RAPIBUS_COLOR
-			case 134: return REGULAR_COLOR;
-			case 200: return RB200_COLOR; // RAPIBUS_COLOR
-			case 300: return REGULAR_COLOR; // RAPIBUS_COLOR
-			case 400: return REGULAR_COLOR; // RAPIBUS_COLOR
-			case 425: return null; // TODO ?
-			case 432: return null; // TODO ?
-			case 472: return null; // TODO ?
-			case 500: return REGULAR_COLOR; // RAPIBUS_COLOR
-			case 534: return null; // TODO ?
-			case 549: return null; // TODO ?
-			case 550: return null; // TODO ?
-			case 566: return null; // TODO ?
-			case 571: return null; // TODO ?
-			case 576: return null; // TODO ?
-			case 597: return null; // TODO ?
-			case 726: return null; // TODO ?
-			case 734: return null; // TODO ?
-			case 747: return null; // TODO ?
-			case 750: return null; // TODO ?
-			case 800: return REGULAR_COLOR; // RAPIBUS_COLOR
-			case 804: return null; // TODO ?
-			case 805: return null; // TODO ?
-			case 807: return null; // TODO ?
-			case 810: return REGULAR_COLOR; // RAPIBUS_COLOR
-			case 811: return null; // TODO ?
-			case 813: return null; // TODO ?
-			case 824: return null; // TODO ?
-			case 825: return null; // TODO ?
-			case 827: return null; // TODO ?
-			case 831: return null; // TODO ?
-			case 833: return null; // TODO ?
-			case 834: return null; // TODO ?
-			case 837: return null; // TODO ?
-			case 859: return null; // TODO ?
-			case 867: return null; // TODO ?
-			case 870: return PEAK_COLOR; // RAPIBUS_COLOR // TODO ??
-			case 873: return null; // TODO ?
-			case 874: return null; // TODO ?
-			case 876: return null; // TODO ?
-			case 878: return null; // TODO ?
-			case 901: return null; // TODO ?
-			case 902: return null; // TODO ?
-			case 904: return null; // TODO ?
-			case 929: return null; // TODO ?
-			case 931: return null; // TODO ?
-			case 932: return null; // TODO ?
-			case 933: return null; // TODO ?
-			case 934: return null; // TODO ?
-			case 935: return null; // TODO ?
-			case 937: return null; // TODO ?
-			case 949: return null; // TODO ?
-			case 950: return null; // TODO ?
-			case 990: return null; // TODO ?
-			// @formatter:on
+		final String color = rsn >= 0 && rsn <= MAX_ROUTE_SHORT_NAME ? ROUTE_COLORS[rsn] : null;
+		if (color == null) {
+			if (FAIL_ON_UNKNOWN_ROUTE_COLOR) {
+				throw new MTLog.Fatal("Unexpected route color %s!", gRoute.toStringPlus());
+			}
+			MTLog.log("Unexpected route color %s! (using agency color)", gRoute.toStringPlus());
+			return null;
 		}
-		throw new MTLog.Fatal("Unexpected route color %s!", gRoute.toStringPlus());
+		return StringUtils.isEmpty(color) ? null : color;
 	}
 
 	private static final Pattern SCHOOL_ROUTE_LONG_NAME_ = Pattern.compile("("
@@ -417,6 +383,16 @@ public class GatineauSTOBusAgencyTools extends DefaultAgencyTools {
 	@NotNull
 	@Override
 	public String cleanTripHeadsign(@NotNull String tripHeadsign) {
+		final long startNanos = CLEAN_TRIP_HEADSIGN_STAGE.start();
+		try {
+			return TRIP_HEADSIGN_CACHE.get(tripHeadsign, this::cleanTripHeadsignNoCache);
+		} finally {
+			CLEAN_TRIP_HEADSIGN_STAGE.end(startNanos);
+		}
+	}
+
+	@NotNull
+	private String cleanTripHeadsignNoCache(@NotNull String tripHeadsign) {
 		tripHeadsign = CleanUtils.keepToAndRemoveVia(tripHeadsign);
 		tripHeadsign = CleanUtils.toLowerCaseUpperCaseWords(Locale.FRENCH, tripHeadsign, getIgnoredWords());
 		tripHeadsign = CLEAN_STATION.matcher(tripHeadsign).replaceAll(CLEAN_STATION_REPLACEMENT);
@@ -444,11 +420,13 @@ public class GatineauSTOBusAgencyTools extends DefaultAgencyTools {
 		return CleanUtils.cleanLabelFR(tripHeadsign);
 	}
 
+	private static final String[] IGNORED_WORDS = new String[]{
+			"AM", "PM",
+			"GD", "STO",
+	};
+
 	private String[] getIgnoredWords() {
-		return new String[]{
-				"AM", "PM",
-				"GD", "STO",
-		};
+		return IGNORED_WORDS; // shared (not modified), no allocation for each route/trip/stop
 	}
 
 	private static final Pattern STARTS_ENDS_WITH_ARRIVAL_DEPARTURE = Pattern.compile("(^"
@@ -465,6 +443,16 @@ public class GatineauSTOBusAgencyTools extends DefaultAgencyTools {
 	@NotNull
 	@Override
 	public String cleanStopName(@NotNull String gStopName) {
+		final long startNanos = CLEAN_STOP_NAME_STAGE.start();
+		try {
+			return STOP_NAME_CACHE.get(gStopName, this::cleanStopNameNoCache);
+		} finally {
+			CLEAN_STOP_NAME_STAGE.end(startNanos);
+		}
+	}
+
+	@NotNull
+	private String cleanStopNameNoCache(@NotNull String gStopName) {
 		gStopName = CleanUtils.toLowerCaseUpperCaseWords(Locale.FRENCH, gStopName, getIgnoredWords());
 		gStopName = CleanUtils.cleanBounds(Locale.FRENCH, gStopName);
 		gStopName = STARTS_ENDS_WITH_ARRIVAL_DEPARTURE.matcher(gStopName).replaceAll(EMPTY);
@@ -488,20 +476,48 @@ public class GatineauSTOBusAgencyTools extends DefaultAgencyTools {
 		return super.getStopCode(gStop);
 	}
 
+	private static final int SUFFIXED_STOP_ID_OFFSET = 100_000;
+
+	// per feed (instance), not shared across current & next feeds: a cache hit skips the collision check
+	// suffixed raw stop ID -> stop ID (called for each stop time, not only each stop)
+	private final ConcurrentHashMap<String, Integer> suffixedStopIdCache = new ConcurrentHashMap<>();
+	// numeric raw stop IDs >= 100_000 already checked for collision
+	private final Set<String> checkedNumericStopIds = ConcurrentHashMap.newKeySet();
+	// stop ID >= 100_000 -> raw stop ID (to detect "1234a" -> 101234 colliding with a real "101234")
+	private final ConcurrentHashMap<Integer, String> stopIdToRawStopId = new ConcurrentHashMap<>();
+
 	@Override
 	public int getStopId(@NotNull GStop gStop) {
 		//noinspection deprecation
 		final String stopId = gStop.getStopId();
-		if (!CharUtils.isDigitsOnly(stopId)) {
-			final Matcher matcher = DIGITS.matcher(stopId);
-			if (matcher.find()) {
-				final int digits = Integer.parseInt(matcher.group());
-				if (stopId.toLowerCase(Locale.FRENCH).endsWith("a")) {
-					return 100_000 + digits;
-				}
+		if (CharUtils.isDigitsOnly(stopId)) {
+			final int newStopId = super.getStopId(gStop); // used for GTFS-RT
+			if (newStopId >= SUFFIXED_STOP_ID_OFFSET && this.checkedNumericStopIds.add(stopId)) {
+				checkStopIdCollision(newStopId, stopId);
 			}
-			throw new MTLog.Fatal("Unexpected stop ID for %s!", gStop);
+			return newStopId;
+		}
+		final Integer cachedStopId = this.suffixedStopIdCache.get(stopId);
+		if (cachedStopId != null) {
+			return cachedStopId;
+		}
+		final Matcher matcher = DIGITS.matcher(stopId);
+		if (matcher.find()) {
+			final int digits = Integer.parseInt(matcher.group());
+			if (stopId.toLowerCase(Locale.FRENCH).endsWith("a")) {
+				final int newStopId = SUFFIXED_STOP_ID_OFFSET + digits;
+				checkStopIdCollision(newStopId, stopId);
+				this.suffixedStopIdCache.put(stopId, newStopId);
+				return newStopId;
+			}
+		}
+		throw new MTLog.Fatal("Unexpected stop ID for %s!", gStop);
+	}
+
+	private void checkStopIdCollision(int stopId, @NotNull String rawStopId) {
+		final String otherRawStopId = this.stopIdToRawStopId.putIfAbsent(stopId, rawStopId);
+		if (otherRawStopId != null && !otherRawStopId.equalsIgnoreCase(rawStopId)) { // "1234a" & "1234A" are the same stop
+			throw new MTLog.Fatal("Stop ID %d used by both '%s' & '%s'!", stopId, otherRawStopId, rawStopId);
 		}
-		return super.getStopId(gStop); // used for GTFS-RT
 	}
 }
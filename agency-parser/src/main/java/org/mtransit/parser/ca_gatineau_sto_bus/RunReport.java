@@ -0,0 +1,176 @@
+package org.mtransit.parser.ca_gatineau_sto_bus;
+
+import org.jetbrains.annotations.NotNull;
+import org.mtransit.parser.MTLog;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// end of parse run: duration, heap, GC, stages & clean caches (to compare data refreshes)
+// compare 2 reports: RunReport <old.json> <new.json> [threshold %]
+final class RunReport {
+
+	// -Dmt.sto.run_report=path/to/report.json to also write the report as JSON (opt-in)
+	private static final String REPORT_FILE_PATH = System.getProperty("mt.sto.run_report");
+
+	private static final double DEFAULT_THRESHOLD_IN_PERCENT = 10.0d;
+
+	private RunReport() {
+	}
+
+	public static void main(@NotNull String[] args) {
+		if (args.length < 2) {
+			throw new MTLog.Fatal("Usage: RunReport <old.json> <new.json> [threshold %] (found %d arguments)!", args.length);
+		}
+		final double thresholdInPercent = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_IN_PERCENT;
+		final List<String> regressions = compare(readMetrics(args[0]), readMetrics(args[1]), thresholdInPercent);
+		if (!regressions.isEmpty()) {
+			throw new MTLog.Fatal("%d regression(s) above %s%%: %s!", regressions.size(), thresholdInPercent, regressions);
+		}
+		MTLog.log("No regression above %s%%.", thresholdInPercent);
+	}
+
+	// only time, heap & GC metrics (row counts grow with the feed: stage time is compared per call)
+	@NotNull
+	static List<String> compare(@NotNull Map<String, Long> oldMetrics, @NotNull Map<String, Long> newMetrics, double thresholdInPercent) {
+		final List<String> regressions = new ArrayList<>();
+		for (Map.Entry<String, Long> oldMetric : oldMetrics.entrySet()) {
+			final String key = oldMetric.getKey();
+			final long oldValue = oldMetric.getValue();
+			final Long newValue = newMetrics.get(key);
+			if (newValue == null) {
+				MTLog.log("- %s: %d -> (missing) REGRESSION", key, oldValue);
+				regressions.add(String.format(Locale.ENGLISH, "%s: %d -> (missing)", key, oldValue));
+				continue;
+			}
+			final boolean regression;
+			final String delta;
+			if (oldValue == 0L) {
+				regression = newValue > 0L;
+				delta = regression ? "from 0" : "+0.0%";
+			} else {
+				final double deltaInPercent = (newValue - oldValue) * 100.0d / oldValue;
+				regression = deltaInPercent > thresholdInPercent;
+				delta = String.format(Locale.ENGLISH, "%+.1f%%", deltaInPercent);
+			}
+			MTLog.log("- %s: %d -> %d (%s)%s", key, oldValue, newValue, delta, regression ? " REGRESSION" : "");
+			if (regression) {
+				regressions.add(String.format(Locale.ENGLISH, "%s: %d -> %d (%s)", key, oldValue, newValue, delta));
+			}
+		}
+		for (Map.Entry<String, Long> newMetric : newMetrics.entrySet()) {
+			if (!oldMetrics.containsKey(newMetric.getKey())) {
+				MTLog.log("- %s: (new) -> %d", newMetric.getKey(), newMetric.getValue());
+			}
+		}
+		return regressions;
+	}
+
+	private static final Pattern TOP_LEVEL_METRIC = Pattern.compile("\"(durationMs|heapPoolPeaksSumBytes|gcCount|gcTimeMs)\":(\\d+)");
+	private static final Pattern STAGES = Pattern.compile("\"stages\":\\[([^\\]]*)]");
+	private static final Pattern STAGE = Pattern.compile("\\{\"name\":\"([^\"]*)\",\"calls\":(\\d+),\"timeNanos\":(\\d+)}");
+
+	@NotNull
+	static Map<String, Long> readMetrics(@NotNull String filePath) {
+		final String json;
+		try {
+			json = new String(Files.readAllBytes(Paths.get(filePath)), StandardCharsets.UTF_8);
+		} catch (IOException ioe) {
+			throw new MTLog.Fatal(ioe, "Error while reading run report '%s'!", filePath);
+		}
+		final Map<String, Long> metrics = new LinkedHashMap<>();
+		final Matcher topLevelMatcher = TOP_LEVEL_METRIC.matcher(json);
+		while (topLevelMatcher.find()) {
+			metrics.put(topLevelMatcher.group(1), Long.parseLong(topLevelMatcher.group(2)));
+		}
+		final Matcher stagesMatcher = STAGES.matcher(json);
+		if (stagesMatcher.find()) {
+			final Matcher stageMatcher = STAGE.matcher(stagesMatcher.group(1));
+			while (stageMatcher.find()) {
+				final long calls = Long.parseLong(stageMatcher.group(2));
+				final long timeNanos = Long.parseLong(stageMatcher.group(3));
+				metrics.put(stageMatcher.group(1) + ".nanosPerCall", calls == 0L ? 0L : timeNanos / calls);
+			}
+		}
+		return metrics;
+	}
+
+	static void logAndWrite(@NotNull String[] args, long startTimeMs, @NotNull Stage[] stages, @NotNull CleanCache[] caches) {
+		final long durationMs = System.currentTimeMillis() - startTimeMs;
+		// sum of each heap pool's own peak (not simultaneous): upper bound of the real peak heap
+		long heapPoolPeaksSumBytes = 0L;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				heapPoolPeaksSumBytes += pool.getPeakUsage().getUsed();
+			}
+		}
+		long gcCount = 0L;
+		long gcTimeMs = 0L;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount += Math.max(0L, gc.getCollectionCount());
+			gcTimeMs += Math.max(0L, gc.getCollectionTime());
+		}
+		MTLog.log("Run: %d ms, heap pool peaks sum: %d MB, GC: %d collections in %d ms.",
+				durationMs, heapPoolPeaksSumBytes / 1024L / 1024L, gcCount, gcTimeMs);
+		for (Stage stage : stages) {
+			stage.logStats();
+		}
+		for (CleanCache cache : caches) {
+			cache.logStats();
+		}
+		if (REPORT_FILE_PATH == null || REPORT_FILE_PATH.isEmpty()) {
+			return;
+		}
+		final StringBuilder sb = new StringBuilder();
+		sb.append("{");
+		sb.append("\"startTimeMs\":").append(startTimeMs).append(",");
+		sb.append("\"durationMs\":").append(durationMs).append(",");
+		sb.append("\"heapPoolPeaksSumBytes\":").append(heapPoolPeaksSumBytes).append(",");
+		sb.append("\"gcCount\":").append(gcCount).append(",");
+		sb.append("\"gcTimeMs\":").append(gcTimeMs).append(",");
+		sb.append("\"stages\":[");
+		for (int i = 0; i < stages.length; i++) {
+			if (i > 0) {
+				sb.append(",");
+			}
+			stages[i].appendJson(sb);
+		}
+		sb.append("],");
+		sb.append("\"cleanCaches\":[");
+		for (int i = 0; i < caches.length; i++) {
+			if (i > 0) {
+				sb.append(",");
+			}
+			caches[i].appendJson(sb);
+		}
+		sb.append("],");
+		sb.append("\"args\":[");
+		for (int i = 0; i < args.length; i++) {
+			if (i > 0) {
+				sb.append(",");
+			}
+			sb.append("\"").append(args[i].replace("\\", "\\\\").replace("\"", "\\\"")).append("\"");
+		}
+		sb.append("]");
+		sb.append("}\n");
+		try {
+			Files.write(Paths.get(REPORT_FILE_PATH), sb.toString().getBytes(StandardCharsets.UTF_8));
+			MTLog.log("Run report written to '%s'.", REPORT_FILE_PATH);
+		} catch (IOException ioe) {
+			MTLog.log("Error while writing run report to '%s': %s", REPORT_FILE_PATH, ioe);
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package org.mtransit.parser.ca_gatineau_sto_bus;
+
+import org.jetbrains.annotations.NotNull;
+import org.mtransit.parser.MTLog;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// parse run stage timer (calls & time spent) for the run report
+final class Stage {
+
+	@NotNull
+	private final String name;
+
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong timeNanos = new AtomicLong();
+
+	Stage(@NotNull String name) {
+		this.name = name;
+	}
+
+	long start() {
+		return System.nanoTime();
+	}
+
+	void end(long startNanos) {
+		this.calls.incrementAndGet();
+		this.timeNanos.addAndGet(System.nanoTime() - startNanos);
+	}
+
+	void logStats() {
+		MTLog.log("%s: %d calls in %d ms.", this.name, this.calls.get(), this.timeNanos.get() / 1_000_000L);
+	}
+
+	void appendJson(@NotNull StringBuilder sb) {
+		sb.append("{");
+		sb.append("\"name\":\"").append(this.name).append("\",");
+		sb.append("\"calls\":").append(this.calls.get()).append(",");
+		sb.append("\"timeNanos\":").append(this.timeNanos.get());
+		sb.append("}");
+	}
+}